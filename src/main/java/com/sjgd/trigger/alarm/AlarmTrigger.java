@@ -18,6 +18,7 @@ import java.util.Scanner;
 import java.util.HashMap;
 import java.util.Map;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import org.apache.tsfile.write.schema.IMeasurementSchema;
 
 
@@ -34,6 +35,10 @@ public class AlarmTrigger implements Trigger {
     private String apiKeySecret;
     private String actionHookUrl;
     private AlarmRule rule;
+    // fire只读取一次快照，loadRule在rule之后写入
+    private volatile CompiledRule compiledRule;
+    // 评估轨迹，替代逐行日志
+    private EvaluationTraceBuffer traceBuffer;
 
 
     @Override
@@ -48,8 +53,9 @@ public class AlarmTrigger implements Trigger {
         this.apiKeySecret = attributes.getString("X-API-Key-Secret");
         this.actionHookUrl = attributes.getString("actionHookUrl");
         logger.info("AlarmTrigger created with apiBaseUrl={}, rule_id={}, actionHookUrl={}", apiBaseUrl, ruleId, actionHookUrl);
+        this.traceBuffer = EvaluationTraceBuffer.acquire();
         // 拉取本rule配置，失败只打印日志不抛异常
-        this.rule = fetchRuleFromApi();
+        loadRule();
         if (rule == null) {
             logger.error("Failed to fetch rule from API, rule_id={}", ruleId);
         }
@@ -58,6 +64,10 @@ public class AlarmTrigger implements Trigger {
     @Override
     public void onDrop() throws Exception {
         // 资源释放、清理
+        if (traceBuffer != null) {
+            EvaluationTraceBuffer.release();
+            traceBuffer = null;
+        }
         logger.info("AlarmTrigger dropped");
     }
 
@@ -71,82 +81,106 @@ public class AlarmTrigger implements Trigger {
     public boolean fire(Tablet tablet) throws Exception {
         try {
             String devicePath = tablet.getDeviceId();
-            logger.info("AlarmTrigger.fire() called for device: {}", devicePath);
+            logger.debug("AlarmTrigger.fire() called for device: {}", devicePath);
 
             // 若rule为null，重试fetchRuleFromApi一次
-            if (rule == null) {
+            CompiledRule compiled = compiledRule;
+            if (compiled == null) {
                 logger.warn("Rule is null in fire, retrying fetchRuleFromApi, rule_id={}", ruleId);
-                rule = fetchRuleFromApi();
-                if (rule == null) {
+                loadRule();
+                compiled = compiledRule;
+                if (compiled == null) {
                     logger.error("Still failed to fetch rule from API in fire, rule_id={}, skip this fire.", ruleId);
                     return false;
                 }
             }
 
             // 检查是否有配置条件
-            if (rule.getConditions() == null || rule.getConditions().isEmpty()) {
+            if (compiled.size() == 0) {
                 logger.warn("No conditions configured for rule {}, skipping alarm check", ruleId);
                 return true;
             }
 
+            // 空Tablet无需剪枝和记录轨迹
+            if (tablet.getRowSize() == 0) {
+                return true;
+            }
+
+            // 整批剪枝：按列统计判断本Tablet是否可能触发告警
+            CompiledRule.Verdict[] verdicts = compiled.prune(
+                    ColumnStats.collect(tablet, compiled.getReferencedProperties()));
+            if (compiled.combine(verdicts) == CompiledRule.Verdict.ALWAYS_FALSE) {
+                logger.debug("Tablet pruned for device {}, rule {}: no row can satisfy the conditions", devicePath, ruleId);
+                if (traceBuffer != null && traceBuffer.shouldCapture(ruleId, devicePath)) {
+                    recordPrunedTrace(tablet, devicePath, compiled, verdicts);
+                }
+                return true;
+            }
+
             List<IMeasurementSchema> schemaList = tablet.getSchemas();
             BitMap[] bitMaps = tablet.getBitMaps();
             long[] timestamps = tablet.getTimestamps();
             Object[] values = tablet.getValues();
             int rowSize = tablet.getRowSize();
 
+            // 只抽取条件引用的列，未引用的列（包括TEXT/STRING）不做解码
+            int[] columns = new int[schemaList.size()];
+            int columnCount = 0;
+            for (int j = 0; j < schemaList.size(); j++) {
+                if (compiled.getReferencedProperties().contains(schemaList.get(j).getMeasurementName())) {
+                    columns[columnCount++] = j;
+                }
+            }
+
+            // 轨迹默认关闭；开启后每个Tablet只分配一次条件结果数组，逐行复用
+            boolean[] conditionScratch = null;
+
             for (int i = 0; i < rowSize; i++) {
                 long timestamp = timestamps[i];
-                logger.info("=== Processing timestamp[{}]: {} ===", i, timestamp);
                 Map<String, Object> telemetryDict = new HashMap<>();
 
-                for (int j = 0; j < schemaList.size(); j++) {
+                for (int k = 0; k < columnCount; k++) {
+                    int j = columns[k];
                     // 跳过空值
                     if (bitMaps != null && bitMaps[j] != null && bitMaps[j].isMarked(i)) {
-                        logger.info("Column[{}]: schema={}, value=null (marked as null)", j, schemaList.get(j).getType());
                         continue;
                     }
-                    TSDataType type = schemaList.get(j).getType();
-                    Object col = values[j];
-                    Object value = null;
-                    if (type == TSDataType.DOUBLE) {
-                        value = ((double[]) col)[i];
-                    } else if (type == TSDataType.FLOAT) {
-                        value = ((float[]) col)[i];
-                    } else if (type == TSDataType.INT64) {
-                        value = ((long[]) col)[i];
-                    } else if (type == TSDataType.INT32) {
-                        value = ((int[]) col)[i];
-                    } else if (type == TSDataType.BOOLEAN) {
-                        value = ((boolean[]) col)[i];
-                    } else if (type == TSDataType.TEXT) {
-                        value = ((Binary[]) col)[i].getStringValue(StandardCharsets.UTF_8);
-                    }
-                    logger.info("Column[{}]: schema={}, value={}", j, type, value);
+                    // TEXT/STRING保持为Binary，条件直接在字节上判断
+                    Object value = getValueFromTablet(values[j], i, schemaList.get(j).getType());
                     if (value != null) {
-                        // 直接使用列索引作为key，与官方示例保持一致
-                        // String key = "col_" + j;
-                        String key = schemaList.get(j).getMeasurementName();
-                        telemetryDict.put(key, value);
-                        logger.info("Added to telemetryDict: {} = {}", key, value);
+                        telemetryDict.put(schemaList.get(j).getMeasurementName(), value);
                     }
                 }
 
-                logger.info("Final telemetryDict: {}", telemetryDict);
                 // 检查条件
                 if (!telemetryDict.isEmpty()) {
-                    boolean triggered = checkConditions(rule.getConditions(), telemetryDict);
+                    boolean[] conditionResults = null;
+                    if (traceBuffer != null && traceBuffer.shouldCapture(ruleId, devicePath)) {
+                        if (conditionScratch == null) {
+                            conditionScratch = new boolean[compiled.size()];
+                        }
+                        conditionResults = conditionScratch;
+                    }
+                    boolean triggered = compiled.evaluate(telemetryDict, verdicts, conditionResults);
+                    if (conditionResults != null) {
+                        traceBuffer.record(ruleId, devicePath, timestamp, telemetryDict,
+                                compiled.getConditions(), conditionResults, triggered);
+                    }
                     if (triggered) {
                         Map<String, Object> triggeredTelemetry = new HashMap<>();
-                        for (AlarmCondition cond : rule.getConditions()) {
-                            String propId = cond.getPropertyIdentifier();
-                            if (telemetryDict.containsKey(propId)) {
-                                triggeredTelemetry.put(propId, telemetryDict.get(propId));
+                        for (String propId : compiled.getReferencedProperties()) {
+                            Object value = telemetryDict.get(propId);
+                            if (value instanceof Binary) {
+                                // 仅在告警命中时解码文本
+                                value = ((Binary) value).getStringValue(StandardCharsets.UTF_8);
+                            }
+                            if (value != null) {
+                                triggeredTelemetry.put(propId, value);
                             }
                         }
                         if (!triggeredTelemetry.isEmpty()) {
                             logger.info("*** ALARM TRIGGERED *** Device: {}, Timestamp: {}", devicePath, timestamp);
-                            triggerAlarmHistory(devicePath, triggeredTelemetry, timestamp);
+                            triggerAlarmHistory(devicePath, compiled.getConditions(), triggeredTelemetry, timestamp);
                             triggerActionHook(devicePath, triggeredTelemetry, timestamp);
                         }
                     }
@@ -159,6 +193,21 @@ public class AlarmTrigger implements Trigger {
         }
     }
 
+    /**
+     * 为整批剪枝的Tablet记录一条轨迹，便于排查规则为何未触发
+     */
+    private void recordPrunedTrace(Tablet tablet, String devicePath, CompiledRule compiled, CompiledRule.Verdict[] verdicts) {
+        long[] timestamps = tablet.getTimestamps();
+        int rowSize = tablet.getRowSize();
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < rowSize; i++) {
+            if (timestamps[i] < first) first = timestamps[i];
+            if (timestamps[i] > last) last = timestamps[i];
+        }
+        traceBuffer.recordPruned(ruleId, devicePath, first, last, rowSize, compiled.getConditions(), verdicts);
+    }
+
     /**
      * 打印JAR包信息
      */
@@ -207,49 +256,71 @@ public class AlarmTrigger implements Trigger {
     }
 
     /**
-     * 从Tablet中安全获取指定列和行的值
+     * 从Tablet列数据中安全获取指定行的值
+     * TEXT/STRING返回Binary，BLOB返回十六进制字符串，DATE返回yyyyMMdd整数，TIMESTAMP返回原始long值（精度取决于DataNode的timestamp_precision：ms/us/ns）
      */
-    private Object getValueFromTablet(Tablet tablet, int columnIndex, int rowIndex, TSDataType dataType) {
+    private Object getValueFromTablet(Object columnData, int rowIndex, TSDataType dataType) {
+        if (columnData == null) {
+            return null;
+        }
         try {
-            Object[] values = tablet.getValues();
-            if (values == null || columnIndex >= values.length) {
-                return null;
-            }
-            
-            Object columnData = values[columnIndex];
-            if (columnData == null) {
-                return null;
-            }
-            
             // 根据数据类型安全地获取值（位图检查已在fire方法中处理）
-            if (dataType.equals(TSDataType.BOOLEAN)) {
-                boolean[] boolArray = (boolean[]) columnData;
-                return rowIndex < boolArray.length ? boolArray[rowIndex] : null;
-            } else if (dataType.equals(TSDataType.INT32)) {
-                int[] intArray = (int[]) columnData;
-                return rowIndex < intArray.length ? intArray[rowIndex] : null;
-            } else if (dataType.equals(TSDataType.INT64)) {
-                long[] longArray = (long[]) columnData;
-                return rowIndex < longArray.length ? longArray[rowIndex] : null;
-            } else if (dataType.equals(TSDataType.FLOAT)) {
-                float[] floatArray = (float[]) columnData;
-                return rowIndex < floatArray.length ? floatArray[rowIndex] : null;
-            } else if (dataType.equals(TSDataType.DOUBLE)) {
-                double[] doubleArray = (double[]) columnData;
-                return rowIndex < doubleArray.length ? doubleArray[rowIndex] : null;
-            } else if (dataType.equals(TSDataType.TEXT)) {
-                Binary[] binaryArray = (Binary[]) columnData;
-                return rowIndex < binaryArray.length ? binaryArray[rowIndex].getStringValue(StandardCharsets.UTF_8) : null;
-            } else {
-                logger.warn("Unsupported data type: {}", dataType);
-                return null;
+            switch (dataType) {
+                case BOOLEAN:
+                    return ((boolean[]) columnData)[rowIndex];
+                case INT32:
+                    return ((int[]) columnData)[rowIndex];
+                case INT64:
+                case TIMESTAMP:
+                    return ((long[]) columnData)[rowIndex];
+                case FLOAT:
+                    return ((float[]) columnData)[rowIndex];
+                case DOUBLE:
+                    return ((double[]) columnData)[rowIndex];
+                case DATE: {
+                    LocalDate date = ((LocalDate[]) columnData)[rowIndex];
+                    return date != null ? ColumnStats.toDateInt(date) : null;
+                }
+                case TEXT:
+                case STRING:
+                    return ((Binary[]) columnData)[rowIndex];
+                case BLOB: {
+                    Binary blob = ((Binary[]) columnData)[rowIndex];
+                    return blob != null ? toHexString(blob.getValues()) : null;
+                }
+                default:
+                    logger.warn("Unsupported data type: {}", dataType);
+                    return null;
             }
         } catch (Exception e) {
-            logger.error("Error getting value from tablet: column={}, row={}, type={}", columnIndex, rowIndex, dataType, e);
+            logger.error("Error getting value from tablet: row={}, type={}", rowIndex, dataType, e);
             return null;
         }
     }
 
+    /**
+     * BLOB按IoTDB CLI的显示格式转为0x开头的十六进制字符串
+     */
+    private static String toHexString(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        StringBuilder sb = new StringBuilder(2 + bytes.length * 2).append("0x");
+        for (byte b : bytes) {
+            sb.append(digits[(b >> 4) & 0xf]).append(digits[b & 0xf]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 拉取本rule配置并预编译
+     */
+    private void loadRule() {
+        AlarmRule fetched = fetchRuleFromApi();
+        this.rule = fetched;
+        if (fetched != null) {
+            this.compiledRule = CompiledRule.compile(fetched);
+        }
+    }
+
     /**
      * 拉取本rule配置
      */
@@ -309,96 +380,10 @@ public class AlarmTrigger implements Trigger {
         }
     }
 
-    /**
-     * 多条件组合判断，支持and/or
-     */
-    private boolean checkConditions(List<AlarmCondition> conditions, Map<String, Object> telemetryDict) {
-        if (conditions == null || conditions.isEmpty()) return false;
-        
-        AlarmCondition first = conditions.get(0);
-        boolean result = checkSingleCondition(first, telemetryDict);
-        
-        for (int i = 1; i < conditions.size(); i++) {
-            AlarmCondition cond = conditions.get(i);
-            boolean current = checkSingleCondition(cond, telemetryDict);
-            if ("and".equalsIgnoreCase(cond.getRelation())) {
-                result = result && current;
-            } else {
-                result = result || current;
-            }
-        }
-        return result;
-    }
-
-    /**
-     * 单条件判断
-     */
-    private boolean checkSingleCondition(AlarmCondition cond, Map<String, Object> telemetryDict) {
-        String propId = cond.getPropertyIdentifier();
-        logger.info("Checking condition: propId={}, type={}, threshold={}", 
-            propId, cond.getConditionType(), cond.getThresholdValue());
-
-        if (!telemetryDict.containsKey(propId)) {
-            logger.info("Property {} not found in telemetry data", propId);
-            return false;
-        }
-
-        Object value = telemetryDict.get(propId);
-        if (value == null) {
-            logger.info("Property {} value is null", propId);
-            return false;
-        }
-
-        String type = cond.getConditionType();
-        String threshold = cond.getThresholdValue();
-        String threshold2 = cond.getThresholdValue2();
-
-        try {
-            boolean result = false;
-            if (value instanceof Number) {
-                double numericValue = ((Number) value).doubleValue();
-                double th = threshold != null && !threshold.isEmpty() ? Double.parseDouble(threshold) : 0;
-                double th2 = threshold2 != null && !threshold2.isEmpty() ? Double.parseDouble(threshold2) : 0;
-                switch (type.toLowerCase()) {
-                    case "greater_than": result = numericValue > th; break;
-                    case "less_than": result = numericValue < th; break;
-                    case "equal_to": result = numericValue == th; break;
-                    case "not_equal_to": result = numericValue != th; break;
-                    case "between": result = th2 != 0 ? (numericValue >= th && numericValue <= th2) : false; break;
-                    case "not_between": result = th2 != 0 ? !(numericValue >= th && numericValue <= th2) : false; break;
-                    default: logger.warn("Unknown condition type: {}", type); return false;
-                }
-            } else if (value instanceof Boolean) {
-                boolean boolValue = (Boolean) value;
-                boolean th = Boolean.parseBoolean(threshold);
-                switch (type.toLowerCase()) {
-                    case "equal_to": result = boolValue == th; break;
-                    case "not_equal_to": result = boolValue != th; break;
-                    default: logger.warn("Unsupported boolean condition type: {}", type); return false;
-                }
-            } else if (value instanceof String) {
-                String strValue = (String) value;
-                switch (type.toLowerCase()) {
-                    case "equal_to": result = strValue.equals(threshold); break;
-                    case "not_equal_to": result = !strValue.equals(threshold); break;
-                    default: logger.warn("Unsupported string condition type: {}", type); return false;
-                }
-            } else {
-                logger.warn("Unsupported value type: {} for property {}", value.getClass(), propId);
-                return false;
-            }
-            logger.info("Condition result: {} {} {} = {}", value, type, threshold, result);
-            return result;
-        } catch (Exception e) {
-            logger.error("Failed to compare value: [{}] for property [{}]", value, propId, e);
-            return false;
-        }
-    }
-
     /**
      * 触发告警历史记录
      */
-    private void triggerAlarmHistory(String device, Map<String, Object> telemetry, long timestamp) {
+    private void triggerAlarmHistory(String device, List<AlarmCondition> conditions, Map<String, Object> telemetry, long timestamp) {
         try {
             String url = apiBaseUrl + "/api/v1/alarm/history/createupdate";
             
@@ -408,7 +393,7 @@ public class AlarmTrigger implements Trigger {
             // 添加触发的条件信息
             detailsJson.append("\"triggered_conditions\":[");
             int conditionIdx = 0;
-            for (AlarmCondition cond : rule.getConditions()) {
+            for (AlarmCondition cond : conditions) {
                 String propId = cond.getPropertyIdentifier();
                 // 只添加实际触发的条件（即在telemetry中存在的属性）
                 if (telemetry.containsKey(propId)) {
@@ -521,7 +506,7 @@ public class AlarmTrigger implements Trigger {
      */
     private void triggerActionHook(String device, Map<String, Object> telemetry, long timestamp) {
         if (actionHookUrl == null || actionHookUrl.isEmpty()) {
-            logger.info("Action hook URL is null or empty, skipping");
+            logger.debug("Action hook URL is null or empty, skipping");
             return;
         }
         
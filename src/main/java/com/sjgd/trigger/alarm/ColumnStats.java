@@ -0,0 +1,170 @@
+package com.sjgd.trigger.alarm;
+
+import org.apache.tsfile.enums.TSDataType;
+import org.apache.tsfile.utils.BitMap;
+import org.apache.tsfile.utils.Binary;
+import org.apache.tsfile.write.record.Tablet;
+import org.apache.tsfile.write.schema.IMeasurementSchema;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tablet单列汇总统计（min/max、空值数、布尔/文本取值分布），用于整批剪枝
+ */
+public class ColumnStats {
+    private final TSDataType type;
+    private int nullCount;
+    private int valueCount;
+    // 数值列
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private boolean hasNaN;
+    // 布尔列
+    private int trueCount;
+    private int falseCount;
+    // 文本列：是否所有非空值都相同
+    private boolean allSame = true;
+    private Binary firstText;
+
+    private ColumnStats(TSDataType type) {
+        this.type = type;
+    }
+
+    public TSDataType getType() { return type; }
+    public int getNullCount() { return nullCount; }
+    public int getValueCount() { return valueCount; }
+    public double getMin() { return min; }
+    public double getMax() { return max; }
+    public boolean hasNaN() { return hasNaN; }
+    public int getTrueCount() { return trueCount; }
+    public int getFalseCount() { return falseCount; }
+    public boolean isAllSame() { return allSame; }
+
+    /** 文本列全部相同时的取值（未解码） */
+    public Binary getFirstText() { return firstText; }
+
+    public boolean isNumeric() {
+        return type == TSDataType.DOUBLE || type == TSDataType.FLOAT
+                || type == TSDataType.INT64 || type == TSDataType.INT32
+                || type == TSDataType.TIMESTAMP || type == TSDataType.DATE;
+    }
+
+    /**
+     * DATE按yyyyMMdd整数参与数值比较，与IoTDB内部日期表示一致
+     */
+    public static int toDateInt(LocalDate date) {
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    /**
+     * 对Tablet中指定测点各做一次线性扫描，返回测点名到统计的映射；不在Tablet中的测点不出现在结果里
+     */
+    public static Map<String, ColumnStats> collect(Tablet tablet, Set<String> measurements) {
+        Map<String, ColumnStats> result = new HashMap<>();
+        List<IMeasurementSchema> schemaList = tablet.getSchemas();
+        BitMap[] bitMaps = tablet.getBitMaps();
+        Object[] values = tablet.getValues();
+        int rowSize = tablet.getRowSize();
+
+        for (int j = 0; j < schemaList.size(); j++) {
+            String name = schemaList.get(j).getMeasurementName();
+            if (!measurements.contains(name)) {
+                continue;
+            }
+            BitMap bitMap = bitMaps != null ? bitMaps[j] : null;
+            result.put(name, of(schemaList.get(j).getType(), values[j], bitMap, rowSize));
+        }
+        return result;
+    }
+
+    /**
+     * 对单列数据做统计，列数据格式与Tablet.getValues()中的对应列一致
+     */
+    static ColumnStats of(TSDataType type, Object column, BitMap bitMap, int rowSize) {
+        ColumnStats stats = new ColumnStats(type);
+        stats.scan(column, bitMap, rowSize);
+        return stats;
+    }
+
+    private void scan(Object col, BitMap bitMap, int rowSize) {
+        if (col == null) {
+            nullCount = rowSize;
+            return;
+        }
+        if (type == TSDataType.DOUBLE) {
+            double[] arr = (double[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if (bitMap != null && bitMap.isMarked(i)) { nullCount++; continue; }
+                acceptNumber(arr[i]);
+            }
+        } else if (type == TSDataType.FLOAT) {
+            float[] arr = (float[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if (bitMap != null && bitMap.isMarked(i)) { nullCount++; continue; }
+                acceptNumber(arr[i]);
+            }
+        } else if (type == TSDataType.INT64 || type == TSDataType.TIMESTAMP) {
+            long[] arr = (long[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if (bitMap != null && bitMap.isMarked(i)) { nullCount++; continue; }
+                acceptNumber(arr[i]);
+            }
+        } else if (type == TSDataType.INT32) {
+            int[] arr = (int[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if (bitMap != null && bitMap.isMarked(i)) { nullCount++; continue; }
+                acceptNumber(arr[i]);
+            }
+        } else if (type == TSDataType.DATE) {
+            LocalDate[] arr = (LocalDate[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if ((bitMap != null && bitMap.isMarked(i)) || arr[i] == null) { nullCount++; continue; }
+                acceptNumber(toDateInt(arr[i]));
+            }
+        } else if (type == TSDataType.BOOLEAN) {
+            boolean[] arr = (boolean[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if (bitMap != null && bitMap.isMarked(i)) { nullCount++; continue; }
+                if (arr[i]) trueCount++; else falseCount++;
+                valueCount++;
+            }
+        } else if (type == TSDataType.TEXT || type == TSDataType.STRING) {
+            Binary[] arr = (Binary[]) col;
+            for (int i = 0; i < rowSize; i++) {
+                if ((bitMap != null && bitMap.isMarked(i)) || arr[i] == null) { nullCount++; continue; }
+                if (firstText == null) {
+                    firstText = arr[i];
+                } else if (allSame && !Arrays.equals(firstText.getValues(), arr[i].getValues())) {
+                    allSame = false;
+                }
+                valueCount++;
+            }
+        } else if (type == TSDataType.BLOB) {
+            // BLOB以十六进制字符串参与判断，不做取值分布统计
+            Binary[] arr = (Binary[]) col;
+            allSame = false;
+            for (int i = 0; i < rowSize; i++) {
+                if ((bitMap != null && bitMap.isMarked(i)) || arr[i] == null) { nullCount++; continue; }
+                valueCount++;
+            }
+        } else {
+            // 不支持的类型不会进入遥测数据，按全空处理
+            nullCount = rowSize;
+        }
+    }
+
+    private void acceptNumber(double v) {
+        if (Double.isNaN(v)) {
+            hasNaN = true;
+        } else {
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        valueCount++;
+    }
+}
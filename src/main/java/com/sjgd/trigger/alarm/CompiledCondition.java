@@ -0,0 +1,379 @@
+package com.sjgd.trigger.alarm;
+
+import org.apache.tsfile.enums.TSDataType;
+import org.apache.tsfile.utils.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 预编译的单条件：条件类型和阈值在规则加载时解析一次，fire中不再重复解析
+ *
+ * 文本条件直接比较Binary的UTF-8字节，contains/starts_with/in_set的阈值为逗号分隔的关键字列表，
+ * regex的阈值为完整的正则表达式，只有regex需要把值解码为String。
+ * in_set同时支持数值列（如INT32错误码），contains/starts_with/regex只对文本列生效。
+ */
+public class CompiledCondition {
+    private static final Logger logger = LoggerFactory.getLogger(CompiledCondition.class);
+
+    enum Op {
+        GREATER_THAN, LESS_THAN, EQUAL_TO, NOT_EQUAL_TO, BETWEEN, NOT_BETWEEN,
+        CONTAINS, STARTS_WITH, IN_SET, REGEX, UNKNOWN
+    }
+
+    private final String propertyIdentifier;
+    private final Op op;
+    private final String threshold;
+    private final byte[] thresholdBytes;
+    private final boolean boolThreshold;
+    // 阈值无法解析为数值时，数值比较恒为false
+    private final boolean numericValid;
+    private final double th;
+    private final double th2;
+    // 文本条件
+    private KeywordMatcher keywordMatcher;
+    private byte[][] prefixes;
+    private ByteSet valueSet;
+    private double[] numericSet;
+    private Pattern pattern;
+    // 文本条件配置在非文本列上时只告警一次
+    private volatile boolean nonTextWarned;
+
+    private CompiledCondition(AlarmCondition cond, Op op, boolean numericValid, double th, double th2) {
+        this.propertyIdentifier = cond.getPropertyIdentifier();
+        this.op = op;
+        this.threshold = cond.getThresholdValue();
+        this.thresholdBytes = threshold != null ? threshold.getBytes(StandardCharsets.UTF_8) : null;
+        this.boolThreshold = Boolean.parseBoolean(threshold);
+        this.numericValid = numericValid;
+        this.th = th;
+        this.th2 = th2;
+        compileText();
+    }
+
+    private void compileText() {
+        switch (op) {
+            case CONTAINS:
+                keywordMatcher = KeywordMatcher.build(splitKeywords(threshold));
+                break;
+            case STARTS_WITH: {
+                List<String> keywords = splitKeywords(threshold);
+                prefixes = new byte[keywords.size()][];
+                for (int i = 0; i < prefixes.length; i++) {
+                    prefixes[i] = keywords.get(i).getBytes(StandardCharsets.UTF_8);
+                }
+                break;
+            }
+            case IN_SET: {
+                List<String> values = splitKeywords(threshold);
+                valueSet = new ByteSet(values);
+                numericSet = parseNumericSet(values);
+                break;
+            }
+            case REGEX:
+                try {
+                    pattern = threshold != null ? Pattern.compile(threshold) : null;
+                } catch (PatternSyntaxException e) {
+                    logger.warn("Invalid regex for property {}: {}", propertyIdentifier, e.getMessage());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 解析in_set中可作为数值的项，升序排列供二分查找；-0.0统一为0.0
+     */
+    private static double[] parseNumericSet(List<String> values) {
+        double[] parsed = new double[values.size()];
+        int n = 0;
+        for (String value : values) {
+            try {
+                double d = Double.parseDouble(value);
+                if (!Double.isNaN(d)) {
+                    parsed[n++] = d + 0.0;
+                }
+            } catch (NumberFormatException e) {
+                // 非数值项只参与文本匹配
+            }
+        }
+        double[] result = Arrays.copyOf(parsed, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static List<String> splitKeywords(String value) {
+        List<String> keywords = new ArrayList<>();
+        if (value == null) return keywords;
+        for (String item : value.split(",")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                keywords.add(trimmed);
+            }
+        }
+        return keywords;
+    }
+
+    public static CompiledCondition compile(AlarmCondition cond) {
+        Op op = parseOp(cond.getConditionType());
+        if (op == Op.UNKNOWN) {
+            logger.warn("Unknown condition type: {} for property {}", cond.getConditionType(), cond.getPropertyIdentifier());
+        }
+        String threshold = cond.getThresholdValue();
+        String threshold2 = cond.getThresholdValue2();
+        try {
+            double th = threshold != null && !threshold.isEmpty() ? Double.parseDouble(threshold) : 0;
+            double th2 = threshold2 != null && !threshold2.isEmpty() ? Double.parseDouble(threshold2) : 0;
+            return new CompiledCondition(cond, op, true, th, th2);
+        } catch (NumberFormatException e) {
+            return new CompiledCondition(cond, op, false, 0, 0);
+        }
+    }
+
+    private static Op parseOp(String type) {
+        if (type == null) return Op.UNKNOWN;
+        switch (type.toLowerCase()) {
+            case "greater_than": return Op.GREATER_THAN;
+            case "less_than": return Op.LESS_THAN;
+            case "equal_to": return Op.EQUAL_TO;
+            case "not_equal_to": return Op.NOT_EQUAL_TO;
+            case "between": return Op.BETWEEN;
+            case "not_between": return Op.NOT_BETWEEN;
+            case "contains": return Op.CONTAINS;
+            case "starts_with": return Op.STARTS_WITH;
+            case "in_set": return Op.IN_SET;
+            case "regex": return Op.REGEX;
+            default: return Op.UNKNOWN;
+        }
+    }
+
+    public String getPropertyIdentifier() { return propertyIdentifier; }
+
+    /**
+     * 单条件判断，值缺失或类型不支持时返回false
+     */
+    public boolean test(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Number) {
+            if (op == Op.IN_SET) {
+                return inNumericSet(((Number) value).doubleValue());
+            }
+            return numericValid && testNumber(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            boolean boolValue = (Boolean) value;
+            switch (op) {
+                case EQUAL_TO: return boolValue == boolThreshold;
+                case NOT_EQUAL_TO: return boolValue != boolThreshold;
+                default: return false;
+            }
+        } else if (value instanceof Binary) {
+            return testText(((Binary) value).getValues(), (Binary) value, null);
+        } else if (value instanceof String) {
+            String strValue = (String) value;
+            switch (op) {
+                case EQUAL_TO: return strValue.equals(threshold);
+                case NOT_EQUAL_TO: return !strValue.equals(threshold);
+                case REGEX: return pattern != null && pattern.matcher(strValue).find();
+                default: return isTextOp() && testText(strValue.getBytes(StandardCharsets.UTF_8), null, strValue);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 文本判断，binary和str至少一个非空，仅regex在需要时解码
+     */
+    private boolean testText(byte[] bytes, Binary binary, String str) {
+        switch (op) {
+            case EQUAL_TO: return thresholdBytes != null && Arrays.equals(bytes, thresholdBytes);
+            case NOT_EQUAL_TO: return thresholdBytes == null || !Arrays.equals(bytes, thresholdBytes);
+            case CONTAINS: return keywordMatcher.matches(bytes, bytes.length);
+            case STARTS_WITH:
+                for (byte[] prefix : prefixes) {
+                    if (startsWith(bytes, prefix)) return true;
+                }
+                return false;
+            case IN_SET: return valueSet.contains(bytes);
+            case REGEX:
+                if (pattern == null) return false;
+                return pattern.matcher(str != null ? str : binary.getStringValue(StandardCharsets.UTF_8)).find();
+            default: return false;
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (prefix.length > bytes.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private boolean isTextOp() {
+        switch (op) {
+            case EQUAL_TO: case NOT_EQUAL_TO: case CONTAINS: case STARTS_WITH: case IN_SET: case REGEX:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean inNumericSet(double v) {
+        return !Double.isNaN(v) && Arrays.binarySearch(numericSet, v + 0.0) >= 0;
+    }
+
+    private boolean testNumber(double v) {
+        switch (op) {
+            case GREATER_THAN: return v > th;
+            case LESS_THAN: return v < th;
+            case EQUAL_TO: return v == th;
+            case NOT_EQUAL_TO: return v != th;
+            case BETWEEN: return th2 != 0 && v >= th && v <= th2;
+            case NOT_BETWEEN: return th2 != 0 && !(v >= th && v <= th2);
+            default: return false;
+        }
+    }
+
+    /**
+     * 根据整列统计判断本条件在该Tablet上是否恒真/恒假
+     */
+    public CompiledRule.Verdict prune(ColumnStats stats) {
+        if (stats == null || stats.getValueCount() == 0) {
+            return CompiledRule.Verdict.ALWAYS_FALSE;
+        }
+        Boolean nonNull = evaluateNonNull(stats);
+        if (nonNull == null) {
+            return CompiledRule.Verdict.UNKNOWN;
+        }
+        if (!nonNull) {
+            return CompiledRule.Verdict.ALWAYS_FALSE;
+        }
+        // 空值行上条件为false，只有无空值时才恒真
+        return stats.getNullCount() == 0 ? CompiledRule.Verdict.ALWAYS_TRUE : CompiledRule.Verdict.UNKNOWN;
+    }
+
+    /**
+     * 所有非空值上的判断结果：全部为真/全部为假/无法确定(null)
+     */
+    private Boolean evaluateNonNull(ColumnStats stats) {
+        if (stats.isNumeric()) {
+            warnIfTextOnly(stats);
+            if (op == Op.IN_SET) {
+                if (stats.hasNaN()) return null;
+                return evaluateNumericSet(stats.getMin(), stats.getMax());
+            }
+            if (!numericValid) return false;
+            if (stats.hasNaN()) return null;
+            return evaluateRange(stats.getMin(), stats.getMax());
+        }
+        switch (stats.getType()) {
+            case BOOLEAN:
+                warnIfTextOnly(stats);
+                if (op != Op.EQUAL_TO && op != Op.NOT_EQUAL_TO) return false;
+                if (stats.getTrueCount() == 0) return test(Boolean.FALSE);
+                if (stats.getFalseCount() == 0) return test(Boolean.TRUE);
+                return null;
+            case TEXT:
+            case STRING:
+            case BLOB:
+                if (!isTextOp()) return false;
+                return stats.isAllSame() ? test(stats.getFirstText()) : null;
+            default:
+                return false;
+        }
+    }
+
+    private void warnIfTextOnly(ColumnStats stats) {
+        boolean textOnly = op == Op.CONTAINS || op == Op.STARTS_WITH || op == Op.REGEX
+                || (op == Op.IN_SET && stats.getType() == TSDataType.BOOLEAN);
+        if (textOnly && !nonTextWarned) {
+            nonTextWarned = true;
+            logger.warn("Condition {} on property {} only applies to text values, {} column never matches",
+                    op.name().toLowerCase(), propertyIdentifier, stats.getType());
+        }
+    }
+
+    /**
+     * 数值in_set：区间内没有集合元素则恒假，区间退化为集合中的单点则恒真
+     */
+    private Boolean evaluateNumericSet(double min, double max) {
+        int from = Arrays.binarySearch(numericSet, min + 0.0);
+        int insertion = from >= 0 ? from : -from - 1;
+        if (insertion >= numericSet.length || numericSet[insertion] > max) return false;
+        if (min == max && from >= 0) return true;
+        return null;
+    }
+
+    private Boolean evaluateRange(double min, double max) {
+        switch (op) {
+            case GREATER_THAN:
+                if (min > th) return true;
+                if (max <= th) return false;
+                return null;
+            case LESS_THAN:
+                if (max < th) return true;
+                if (min >= th) return false;
+                return null;
+            case EQUAL_TO:
+                if (th < min || th > max) return false;
+                if (min == th && max == th) return true;
+                return null;
+            case NOT_EQUAL_TO:
+                if (th < min || th > max) return true;
+                if (min == th && max == th) return false;
+                return null;
+            case BETWEEN:
+                if (th2 == 0) return false;
+                if (min >= th && max <= th2) return true;
+                if (max < th || min > th2) return false;
+                return null;
+            case NOT_BETWEEN:
+                if (th2 == 0) return false;
+                if (max < th || min > th2) return true;
+                if (min >= th && max <= th2) return false;
+                return null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * in_set使用的字节串集合（开放寻址），查找时不创建String
+     */
+    private static final class ByteSet {
+        private final byte[][] table;
+        private final int mask;
+
+        ByteSet(List<String> values) {
+            int size = Integer.highestOneBit(Math.max(2, values.size() * 2) - 1) << 1;
+            this.table = new byte[size][];
+            this.mask = size - 1;
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                int idx = Arrays.hashCode(bytes) & mask;
+                while (table[idx] != null && !Arrays.equals(table[idx], bytes)) {
+                    idx = (idx + 1) & mask;
+                }
+                table[idx] = bytes;
+            }
+        }
+
+        boolean contains(byte[] bytes) {
+            int idx = Arrays.hashCode(bytes) & mask;
+            while (table[idx] != null) {
+                if (Arrays.equals(table[idx], bytes)) return true;
+                idx = (idx + 1) & mask;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.sjgd.trigger.alarm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译的告警规则：按条件顺序做and/or组合，并支持基于Tablet列统计的整批剪枝
+ */
+public class CompiledRule {
+
+    /** 条件在一个Tablet上的剪枝结论 */
+    public enum Verdict { ALWAYS_TRUE, ALWAYS_FALSE, UNKNOWN }
+
+    private final List<AlarmCondition> conditions;
+    private final CompiledCondition[] compiled;
+    private final boolean[] andRelation;
+    private final Set<String> referencedProperties;
+
+    private CompiledRule(List<AlarmCondition> conditions) {
+        this.conditions = conditions;
+        this.compiled = new CompiledCondition[conditions.size()];
+        this.andRelation = new boolean[conditions.size()];
+        Set<String> props = new HashSet<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            AlarmCondition cond = conditions.get(i);
+            compiled[i] = CompiledCondition.compile(cond);
+            andRelation[i] = "and".equalsIgnoreCase(cond.getRelation());
+            props.add(cond.getPropertyIdentifier());
+        }
+        this.referencedProperties = Collections.unmodifiableSet(props);
+    }
+
+    public static CompiledRule compile(AlarmRule rule) {
+        List<AlarmCondition> conditions = rule.getConditions();
+        return new CompiledRule(conditions != null ? conditions : Collections.<AlarmCondition>emptyList());
+    }
+
+    public List<AlarmCondition> getConditions() { return conditions; }
+    public int size() { return compiled.length; }
+
+    /** 条件引用到的测点，只需对这些列做统计 */
+    public Set<String> getReferencedProperties() { return referencedProperties; }
+
+    /**
+     * 根据列统计得出每个条件的剪枝结论
+     */
+    public Verdict[] prune(Map<String, ColumnStats> stats) {
+        Verdict[] verdicts = new Verdict[compiled.length];
+        for (int i = 0; i < compiled.length; i++) {
+            verdicts[i] = compiled[i].prune(stats.get(compiled[i].getPropertyIdentifier()));
+        }
+        return verdicts;
+    }
+
+    /**
+     * 按and/or组合各条件结论，ALWAYS_FALSE表示整个Tablet不可能触发告警
+     */
+    public Verdict combine(Verdict[] verdicts) {
+        if (verdicts.length == 0) return Verdict.ALWAYS_FALSE;
+        Verdict result = verdicts[0];
+        for (int i = 1; i < verdicts.length; i++) {
+            Verdict current = verdicts[i];
+            if (andRelation[i]) {
+                if (result == Verdict.ALWAYS_FALSE || current == Verdict.ALWAYS_FALSE) {
+                    result = Verdict.ALWAYS_FALSE;
+                } else if (result == Verdict.ALWAYS_TRUE && current == Verdict.ALWAYS_TRUE) {
+                    result = Verdict.ALWAYS_TRUE;
+                } else {
+                    result = Verdict.UNKNOWN;
+                }
+            } else {
+                if (result == Verdict.ALWAYS_TRUE || current == Verdict.ALWAYS_TRUE) {
+                    result = Verdict.ALWAYS_TRUE;
+                } else if (result == Verdict.ALWAYS_FALSE && current == Verdict.ALWAYS_FALSE) {
+                    result = Verdict.ALWAYS_FALSE;
+                } else {
+                    result = Verdict.UNKNOWN;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 多条件组合判断，支持and/or；verdicts非空时跳过已确定的条件，
+     * conditionResults非空时按下标记录各条件结果
+     */
+    public boolean evaluate(Map<String, Object> telemetryDict, Verdict[] verdicts, boolean[] conditionResults) {
+        if (compiled.length == 0) return false;
+
+        boolean result = false;
+        for (int i = 0; i < compiled.length; i++) {
+            boolean current;
+            Verdict verdict = verdicts != null ? verdicts[i] : Verdict.UNKNOWN;
+            if (verdict == Verdict.ALWAYS_TRUE) {
+                current = true;
+            } else if (verdict == Verdict.ALWAYS_FALSE) {
+                current = false;
+            } else {
+                current = compiled[i].test(telemetryDict.get(compiled[i].getPropertyIdentifier()));
+            }
+            if (conditionResults != null) conditionResults[i] = current;
+            if (i == 0) {
+                result = current;
+            } else if (andRelation[i]) {
+                result = result && current;
+            } else {
+                result = result || current;
+            }
+        }
+        return result;
+    }
+}
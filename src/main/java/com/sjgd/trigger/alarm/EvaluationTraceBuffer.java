@@ -0,0 +1,355 @@
+package com.sjgd.trigger.alarm;
+
+import org.apache.tsfile.utils.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 规则评估轨迹环形缓冲区，替代fire中逐行/逐列的INFO日志
+ *
+ * 槽位在创建时预分配，写入方通过序号抢占槽位并以版本号(奇数表示写入中)保护，
+ * 全程无锁；槽位正被其它线程写入时直接丢弃本条轨迹，不阻塞fire。
+ * 采集默认关闭，由运维通过JMX开启，支持采样和按设备/规则过滤。
+ */
+public class EvaluationTraceBuffer implements EvaluationTraceMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(EvaluationTraceBuffer.class);
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    static final int MAX_INPUTS = 32;
+    static final int MAX_CONDITIONS = 16;
+
+    private static final String OBJECT_NAME_PREFIX = "com.sjgd.trigger.alarm:type=EvaluationTrace";
+
+    // 同一类加载器内的触发器实例共享一个缓冲区和一个MBean
+    private static EvaluationTraceBuffer instance;
+    private static ObjectName registeredName;
+    private static int refCount;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLongArray versions;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long clearedBefore = 0;
+
+    private volatile boolean enabled = false;
+    private volatile int sampleEvery = 1;
+    private volatile Set<String> deviceFilter = Collections.emptySet();
+    private volatile Set<String> ruleFilter = Collections.emptySet();
+
+    public EvaluationTraceBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.versions = new AtomicLongArray(size);
+    }
+
+    /**
+     * 获取共享缓冲区，首次获取时注册JMX
+     */
+    public static synchronized EvaluationTraceBuffer acquire() {
+        if (instance == null) {
+            instance = new EvaluationTraceBuffer(DEFAULT_CAPACITY);
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME_PREFIX + ",loader="
+                        + Integer.toHexString(System.identityHashCode(EvaluationTraceBuffer.class.getClassLoader())));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(instance, name);
+                    registeredName = name;
+                    logger.info("Evaluation trace MBean registered: {}", name);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to register evaluation trace MBean: {}", e.getMessage());
+            }
+        }
+        refCount++;
+        return instance;
+    }
+
+    /**
+     * 释放共享缓冲区，最后一个触发器释放时注销JMX
+     */
+    public static synchronized void release() {
+        if (refCount == 0 || --refCount > 0) {
+            return;
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (Exception e) {
+                logger.warn("Failed to unregister evaluation trace MBean: {}", e.getMessage());
+            }
+            registeredName = null;
+        }
+        instance = null;
+    }
+
+    /**
+     * 判断本次评估是否需要采集（开关、规则/设备过滤、采样）
+     */
+    public boolean shouldCapture(String ruleId, String device) {
+        if (!enabled) return false;
+        Set<String> rules = ruleFilter;
+        if (!rules.isEmpty() && !rules.contains(ruleId)) return false;
+        Set<String> devices = deviceFilter;
+        if (!devices.isEmpty() && !devices.contains(device)) return false;
+        int every = sampleEvery;
+        return every <= 1 || sampleCounter.getAndIncrement() % every == 0;
+    }
+
+    /**
+     * 记录一次评估，conditionResults与conditions按下标一一对应
+     */
+    public void record(String ruleId, String device, long timestamp, Map<String, Object> inputs,
+                       List<AlarmCondition> conditions, boolean[] conditionResults, boolean triggered) {
+        long seq = sequence.getAndIncrement();
+        int idx = (int) (seq & mask);
+        long version = versions.get(idx);
+        if ((version & 1L) != 0 || !versions.compareAndSet(idx, version, version + 1)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            Slot slot = slots[idx];
+            slot.seq = seq;
+            slot.ruleId = ruleId;
+            slot.device = device;
+            slot.timestamp = timestamp;
+            slot.triggered = triggered;
+            slot.pruned = false;
+
+            int n = 0;
+            for (Map.Entry<String, Object> entry : inputs.entrySet()) {
+                if (n == MAX_INPUTS) break;
+                slot.inputNames[n] = entry.getKey();
+                slot.inputValues[n] = entry.getValue();
+                n++;
+            }
+            for (int i = n; i < slot.inputCount; i++) {
+                slot.inputNames[i] = null;
+                slot.inputValues[i] = null;
+            }
+            slot.inputCount = n;
+
+            int c = Math.min(Math.min(conditions.size(), conditionResults.length), MAX_CONDITIONS);
+            for (int i = 0; i < c; i++) {
+                slot.conditions[i] = conditions.get(i);
+                slot.conditionResults[i] = conditionResults[i];
+            }
+            for (int i = c; i < slot.conditionCount; i++) {
+                slot.conditions[i] = null;
+            }
+            slot.conditionCount = c;
+        } finally {
+            versions.set(idx, version + 2);
+        }
+        recorded.incrementAndGet();
+    }
+
+    /**
+     * 记录一个被整批剪枝的Tablet：行数、时间范围及各条件的剪枝结论
+     */
+    public void recordPruned(String ruleId, String device, long firstTimestamp, long lastTimestamp, int rowCount,
+                             List<AlarmCondition> conditions, CompiledRule.Verdict[] verdicts) {
+        long seq = sequence.getAndIncrement();
+        int idx = (int) (seq & mask);
+        long version = versions.get(idx);
+        if ((version & 1L) != 0 || !versions.compareAndSet(idx, version, version + 1)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            Slot slot = slots[idx];
+            slot.seq = seq;
+            slot.ruleId = ruleId;
+            slot.device = device;
+            slot.timestamp = firstTimestamp;
+            slot.lastTimestamp = lastTimestamp;
+            slot.rowCount = rowCount;
+            slot.triggered = false;
+            slot.pruned = true;
+            for (int i = 0; i < slot.inputCount; i++) {
+                slot.inputNames[i] = null;
+                slot.inputValues[i] = null;
+            }
+            slot.inputCount = 0;
+
+            int c = Math.min(Math.min(conditions.size(), verdicts.length), MAX_CONDITIONS);
+            for (int i = 0; i < c; i++) {
+                slot.conditions[i] = conditions.get(i);
+                slot.verdicts[i] = verdicts[i];
+            }
+            for (int i = c; i < slot.conditionCount; i++) {
+                slot.conditions[i] = null;
+            }
+            slot.conditionCount = c;
+        } finally {
+            versions.set(idx, version + 2);
+        }
+        recorded.incrementAndGet();
+    }
+
+    @Override
+    public String[] dumpTraces() {
+        return dumpRecentTraces(slots.length);
+    }
+
+    @Override
+    public String[] dumpRecentTraces(int limit) {
+        long end = sequence.get();
+        long start = Math.max(Math.max(0, end - Math.min(limit, slots.length)), clearedBefore);
+        List<String> result = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (long s = start; s < end; s++) {
+            int idx = (int) (s & mask);
+            long before = versions.get(idx);
+            if ((before & 1L) != 0) continue;
+            Slot slot = slots[idx];
+            if (slot.seq != s) continue;
+            sb.setLength(0);
+            slot.appendTo(sb);
+            // 读取期间槽位被覆盖则丢弃
+            if (!validate(idx, before)) continue;
+            result.add(sb.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * 复核版本号：用同值CAS代替普通读，CAS具有volatile写语义，之前对槽位字段的读不会重排到其后。
+     * 仅在JMX导出时调用，开销可忽略
+     */
+    private boolean validate(int idx, long version) {
+        return versions.compareAndSet(idx, version, version);
+    }
+
+    @Override
+    public void clear() {
+        clearedBefore = sequence.get();
+    }
+
+    @Override
+    public boolean isEnabled() { return enabled; }
+    @Override
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    @Override
+    public int getSampleEvery() { return sampleEvery; }
+    @Override
+    public void setSampleEvery(int sampleEvery) { this.sampleEvery = Math.max(1, sampleEvery); }
+    @Override
+    public String getDeviceFilter() { return String.join(",", deviceFilter); }
+    @Override
+    public void setDeviceFilter(String devices) { this.deviceFilter = parseFilter(devices); }
+    @Override
+    public String getRuleFilter() { return String.join(",", ruleFilter); }
+    @Override
+    public void setRuleFilter(String ruleIds) { this.ruleFilter = parseFilter(ruleIds); }
+    @Override
+    public int getCapacity() { return slots.length; }
+    @Override
+    public long getRecordedCount() { return recorded.get(); }
+    @Override
+    public long getDroppedCount() { return dropped.get(); }
+
+    private static Set<String> parseFilter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> set = new HashSet<>();
+        for (String item : value.split(",")) {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                set.add(trimmed);
+            }
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * 预分配的轨迹槽位，字段仅在持有奇数版本号时写入
+     */
+    private static final class Slot {
+        long seq = -1;
+        String ruleId;
+        String device;
+        long timestamp;
+        boolean triggered;
+        // 整批剪枝的Tablet只记录时间范围、行数和各条件结论
+        boolean pruned;
+        long lastTimestamp;
+        int rowCount;
+        final CompiledRule.Verdict[] verdicts = new CompiledRule.Verdict[MAX_CONDITIONS];
+        int inputCount;
+        final String[] inputNames = new String[MAX_INPUTS];
+        final Object[] inputValues = new Object[MAX_INPUTS];
+        int conditionCount;
+        final AlarmCondition[] conditions = new AlarmCondition[MAX_CONDITIONS];
+        final boolean[] conditionResults = new boolean[MAX_CONDITIONS];
+
+        void appendTo(StringBuilder sb) {
+            sb.append("seq=").append(seq)
+              .append(" rule=").append(ruleId)
+              .append(" device=").append(device);
+            if (pruned) {
+                sb.append(" timestamp=[").append(timestamp).append(',').append(lastTimestamp)
+                  .append("] rows=").append(rowCount)
+                  .append(" pruned");
+            } else {
+                sb.append(" timestamp=").append(timestamp);
+            }
+            sb.append(" inputs={");
+            int n = Math.min(inputCount, MAX_INPUTS);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(", ");
+                Object value = inputValues[i];
+                sb.append(inputNames[i]).append('=');
+                if (value instanceof Binary) {
+                    // 文本值在导出时才解码
+                    sb.append(((Binary) value).getStringValue(StandardCharsets.UTF_8));
+                } else {
+                    sb.append(value);
+                }
+            }
+            sb.append("} conditions=[");
+            int c = Math.min(conditionCount, MAX_CONDITIONS);
+            for (int i = 0; i < c; i++) {
+                AlarmCondition cond = conditions[i];
+                if (i > 0) sb.append(", ");
+                if (cond == null) continue;
+                if (i > 0) sb.append(cond.getRelation()).append(' ');
+                sb.append(cond.getPropertyIdentifier()).append(' ')
+                  .append(cond.getConditionType()).append(' ')
+                  .append(cond.getThresholdValue());
+                if (cond.getThresholdValue2() != null && !cond.getThresholdValue2().isEmpty()) {
+                    sb.append(',').append(cond.getThresholdValue2());
+                }
+                sb.append(" -> ");
+                if (pruned) {
+                    sb.append(verdicts[i]);
+                } else {
+                    sb.append(conditionResults[i]);
+                }
+            }
+            sb.append("] triggered=").append(triggered);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sjgd.trigger.alarm;
+
+/**
+ * 规则评估轨迹的JMX管理接口，用于生产环境按需导出和调整采集策略
+ */
+public interface EvaluationTraceMXBean {
+
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+
+    /** 采样间隔：每N次评估记录1次，1表示全部记录 */
+    int getSampleEvery();
+    void setSampleEvery(int sampleEvery);
+
+    /** 设备过滤，逗号分隔的设备路径，为空表示不过滤 */
+    String getDeviceFilter();
+    void setDeviceFilter(String devices);
+
+    /** 规则过滤，逗号分隔的rule_id，为空表示不过滤 */
+    String getRuleFilter();
+    void setRuleFilter(String ruleIds);
+
+    int getCapacity();
+    long getRecordedCount();
+    long getDroppedCount();
+
+    /** 按时间顺序导出当前缓冲区中的全部轨迹 */
+    String[] dumpTraces();
+
+    /** 导出最近的limit条轨迹 */
+    String[] dumpRecentTraces(int limit);
+
+    void clear();
+}
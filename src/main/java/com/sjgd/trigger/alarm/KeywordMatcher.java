@@ -0,0 +1,133 @@
+package com.sjgd.trigger.alarm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 多关键字匹配（Aho–Corasick），直接在UTF-8字节上运行，匹配时不创建String
+ *
+ * 只为关键字中出现过的字节分配字母表（其余字节归为同一类），
+ * 构建时把失败跳转展开为完整转移表，匹配时每个字节只做两次查表。
+ */
+public class KeywordMatcher {
+    // 字节到字母表下标的映射，0表示未在任何关键字中出现
+    private final char[] byteClass;
+    private final int classCount;
+    // 按state * classCount + class展开的转移表
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    private KeywordMatcher(char[] byteClass, int classCount, int[] transitions, boolean[] accepting) {
+        this.byteClass = byteClass;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * 构建自动机，空关键字会被忽略
+     */
+    public static KeywordMatcher build(Collection<String> keywords) {
+        List<byte[]> encoded = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) continue;
+            encoded.add(keyword.getBytes(StandardCharsets.UTF_8));
+        }
+
+        char[] byteClass = new char[256];
+        int classCount = 1;
+        for (byte[] bytes : encoded) {
+            for (byte b : bytes) {
+                if (byteClass[b & 0xff] == 0) {
+                    byteClass[b & 0xff] = (char) classCount++;
+                }
+            }
+        }
+
+        // 构建trie
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(newState(classCount));
+        terminal.add(false);
+        for (byte[] bytes : encoded) {
+            int state = 0;
+            for (byte b : bytes) {
+                int c = byteClass[b & 0xff];
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState(classCount));
+                    terminal.add(false);
+                }
+                state = trie.get(state)[c];
+            }
+            terminal.set(state, true);
+        }
+
+        int size = trie.size();
+        int[] transitions = new int[size * classCount];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(trie.get(i), 0, transitions, i * classCount, classCount);
+        }
+        boolean[] accepting = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            accepting[i] = terminal.get(i);
+        }
+
+        // 广度优先计算失败链接，并把缺失的转移补成失败状态的转移
+        int[] fail = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < classCount; c++) {
+            int next = transitions[c];
+            if (next < 0) {
+                transitions[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] |= accepting[fail[state]];
+            int row = state * classCount;
+            int failRow = fail[state] * classCount;
+            for (int c = 0; c < classCount; c++) {
+                int next = transitions[row + c];
+                if (next < 0) {
+                    transitions[row + c] = transitions[failRow + c];
+                } else {
+                    fail[next] = transitions[failRow + c];
+                    queue.add(next);
+                }
+            }
+        }
+        return new KeywordMatcher(byteClass, classCount, transitions, accepting);
+    }
+
+    private static int[] newState(int classCount) {
+        int[] row = new int[classCount];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /** 状态数，用于评估内存占用 */
+    int stateCount() { return accepting.length; }
+
+    /** 字母表大小（含未出现字节的公共类） */
+    int alphabetSize() { return classCount; }
+
+    /**
+     * 是否包含任一关键字
+     */
+    public boolean matches(byte[] bytes, int length) {
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            state = transitions[state * classCount + byteClass[bytes[i] & 0xff]];
+            if (accepting[state]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,348 @@
+package com.sjgd.trigger.alarm;
+
+import org.apache.tsfile.enums.TSDataType;
+import org.apache.tsfile.utils.Binary;
+import org.apache.tsfile.utils.BitMap;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 整批剪枝结论必须与逐行判断一致：ALWAYS_FALSE时没有任何行触发，ALWAYS_TRUE时每个非空行都触发
+ */
+public class CompiledRulePruningTest {
+
+    /** 一列测试数据，values中的null表示空值 */
+    private static final class Column {
+        final TSDataType type;
+        final Object[] values;
+
+        Column(TSDataType type, Object... values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        int size() { return values.length; }
+
+        ColumnStats stats() {
+            int rows = values.length;
+            BitMap bitMap = new BitMap(rows);
+            Object data;
+            switch (type) {
+                case DOUBLE: { double[] a = new double[rows]; for (int i = 0; i < rows; i++) if (values[i] != null) a[i] = (Double) values[i]; data = a; break; }
+                case FLOAT: { float[] a = new float[rows]; for (int i = 0; i < rows; i++) if (values[i] != null) a[i] = (Float) values[i]; data = a; break; }
+                case INT64: { long[] a = new long[rows]; for (int i = 0; i < rows; i++) if (values[i] != null) a[i] = (Long) values[i]; data = a; break; }
+                case INT32: { int[] a = new int[rows]; for (int i = 0; i < rows; i++) if (values[i] != null) a[i] = (Integer) values[i]; data = a; break; }
+                case BOOLEAN: { boolean[] a = new boolean[rows]; for (int i = 0; i < rows; i++) if (values[i] != null) a[i] = (Boolean) values[i]; data = a; break; }
+                case TEXT: { Binary[] a = new Binary[rows]; for (int i = 0; i < rows; i++) a[i] = values[i] != null ? binary((String) values[i]) : new Binary(new byte[0]); data = a; break; }
+                default: throw new IllegalArgumentException(type.toString());
+            }
+            for (int i = 0; i < rows; i++) {
+                if (values[i] == null) bitMap.mark(i);
+            }
+            return ColumnStats.of(type, data, bitMap, rows);
+        }
+
+        /** 与fire中getValueFromTablet一致：文本为Binary，其余为装箱后的原始值 */
+        Object rowValue(int row) {
+            Object v = values[row];
+            return v instanceof String ? binary((String) v) : v;
+        }
+    }
+
+    private static Binary binary(String s) {
+        return new Binary(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AlarmCondition cond(String relation, String propId, String type, String th, String th2) {
+        AlarmCondition c = new AlarmCondition();
+        c.setRelation(relation);
+        c.setPropertyIdentifier(propId);
+        c.setConditionType(type);
+        c.setThresholdValue(th);
+        c.setThresholdValue2(th2);
+        return c;
+    }
+
+    private static AlarmCondition cond(String relation, String propId, String type, String th) {
+        return cond(relation, propId, type, th, null);
+    }
+
+    private static Map<String, Column> columns(Object... nameAndColumn) {
+        Map<String, Column> map = new LinkedHashMap<>();
+        for (int i = 0; i < nameAndColumn.length; i += 2) {
+            map.put((String) nameAndColumn[i], (Column) nameAndColumn[i + 1]);
+        }
+        return map;
+    }
+
+    private static List<AlarmCondition> conditions(AlarmCondition... conds) {
+        List<AlarmCondition> list = new ArrayList<>();
+        for (AlarmCondition c : conds) list.add(c);
+        return list;
+    }
+
+    /**
+     * 计算组合结论，同时校验其与逐行判断一致
+     */
+    private static CompiledRule.Verdict checkAgainstRows(Map<String, Column> table, List<AlarmCondition> conds) {
+        AlarmRule rule = new AlarmRule();
+        rule.setConditions(conds);
+        CompiledRule compiled = CompiledRule.compile(rule);
+
+        Map<String, ColumnStats> stats = new HashMap<>();
+        int rows = 0;
+        for (Map.Entry<String, Column> e : table.entrySet()) {
+            if (compiled.getReferencedProperties().contains(e.getKey())) {
+                stats.put(e.getKey(), e.getValue().stats());
+            }
+            rows = Math.max(rows, e.getValue().size());
+        }
+        CompiledRule.Verdict[] verdicts = compiled.prune(stats);
+        CompiledRule.Verdict combined = compiled.combine(verdicts);
+
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> telemetry = new HashMap<>();
+            for (Map.Entry<String, Column> e : table.entrySet()) {
+                if (compiled.getReferencedProperties().contains(e.getKey()) && e.getValue().values[i] != null) {
+                    telemetry.put(e.getKey(), e.getValue().rowValue(i));
+                }
+            }
+            if (telemetry.isEmpty()) continue;
+
+            boolean[] perCondition = new boolean[compiled.size()];
+            boolean full = compiled.evaluate(telemetry, null, perCondition);
+            boolean pruned = compiled.evaluate(telemetry, verdicts, null);
+            String where = "row " + i + " of " + table.keySet() + " with " + describe(conds);
+            assertEquals("pruned evaluation differs at " + where, full, pruned);
+            for (int c = 0; c < verdicts.length; c++) {
+                if (verdicts[c] == CompiledRule.Verdict.ALWAYS_TRUE && !perCondition[c]) fail("condition " + c + " not always true at " + where);
+                if (verdicts[c] == CompiledRule.Verdict.ALWAYS_FALSE && perCondition[c]) fail("condition " + c + " not always false at " + where);
+            }
+            if (combined == CompiledRule.Verdict.ALWAYS_FALSE && full) fail("tablet pruned but " + where + " triggers");
+            if (combined == CompiledRule.Verdict.ALWAYS_TRUE && !full) fail("tablet always true but " + where + " does not trigger");
+        }
+        return combined;
+    }
+
+    private static String describe(List<AlarmCondition> conds) {
+        StringBuilder sb = new StringBuilder();
+        for (AlarmCondition c : conds) {
+            sb.append('[').append(c.getRelation()).append(' ').append(c.getPropertyIdentifier()).append(' ')
+              .append(c.getConditionType()).append(' ').append(c.getThresholdValue()).append(',').append(c.getThresholdValue2()).append(']');
+        }
+        return sb.toString();
+    }
+
+    private static void expect(CompiledRule.Verdict expected, Map<String, Column> table, AlarmCondition... conds) {
+        assertEquals(describe(conditions(conds)), expected, checkAgainstRows(table, conditions(conds)));
+    }
+
+    private static final CompiledRule.Verdict TRUE = CompiledRule.Verdict.ALWAYS_TRUE;
+    private static final CompiledRule.Verdict FALSE = CompiledRule.Verdict.ALWAYS_FALSE;
+    private static final CompiledRule.Verdict UNKNOWN = CompiledRule.Verdict.UNKNOWN;
+
+    @Test
+    public void numericOps() {
+        Map<String, Column> t = columns("t", new Column(TSDataType.DOUBLE, 10.0, 20.0, 30.0));
+        expect(FALSE, t, cond(null, "t", "greater_than", "50"));
+        expect(TRUE, t, cond(null, "t", "greater_than", "5"));
+        expect(UNKNOWN, t, cond(null, "t", "greater_than", "15"));
+        expect(FALSE, t, cond(null, "t", "greater_than", "30"));
+        expect(TRUE, t, cond(null, "t", "less_than", "31"));
+        expect(FALSE, t, cond(null, "t", "less_than", "10"));
+        expect(UNKNOWN, t, cond(null, "t", "equal_to", "15.5"));
+        expect(FALSE, t, cond(null, "t", "equal_to", "35"));
+        expect(UNKNOWN, t, cond(null, "t", "equal_to", "20"));
+        expect(TRUE, t, cond(null, "t", "not_equal_to", "40"));
+        expect(TRUE, t, cond(null, "t", "between", "10", "30"));
+        expect(UNKNOWN, t, cond(null, "t", "between", "15", "25"));
+        expect(FALSE, t, cond(null, "t", "between", "31", "40"));
+        expect(TRUE, t, cond(null, "t", "not_between", "0", "5"));
+        expect(FALSE, t, cond(null, "t", "not_between", "0", "30"));
+        expect(FALSE, t, cond(null, "t", "unknown_op", "1"));
+        expect(FALSE, t, cond(null, "t", "greater_than", "abc"));
+
+        Map<String, Column> same = columns("t", new Column(TSDataType.INT32, 7, 7, 7));
+        expect(TRUE, same, cond(null, "t", "equal_to", "7"));
+        expect(FALSE, same, cond(null, "t", "not_equal_to", "7"));
+    }
+
+    @Test
+    public void betweenWithZeroUpperBoundNeverMatches() {
+        Map<String, Column> t = columns("t", new Column(TSDataType.DOUBLE, -5.0, 0.0, 5.0));
+        expect(FALSE, t, cond(null, "t", "between", "-10", "0"));
+        expect(FALSE, t, cond(null, "t", "between", "-10", ""));
+        expect(FALSE, t, cond(null, "t", "not_between", "100", "0"));
+        expect(FALSE, t, cond(null, "t", "not_between", "100", null));
+    }
+
+    @Test
+    public void mixedAndOrChainsFoldLeftToRight() {
+        Map<String, Column> table = columns(
+                "t", new Column(TSDataType.DOUBLE, 10.0, 20.0, 30.0),
+                "h", new Column(TSDataType.INT32, 50, 60, 70),
+                "s", new Column(TSDataType.TEXT, "ok", "ok", "ok"));
+        // (t>50 or h<100) and s==ok
+        expect(TRUE, table, cond(null, "t", "greater_than", "50"), cond("or", "h", "less_than", "100"), cond("and", "s", "equal_to", "ok"));
+        // (t>50 or h<55) and s==ok
+        expect(UNKNOWN, table, cond(null, "t", "greater_than", "50"), cond("or", "h", "less_than", "55"), cond("and", "s", "equal_to", "ok"));
+        // (t>5 and h>100) or s==bad
+        expect(FALSE, table, cond(null, "t", "greater_than", "5"), cond("and", "h", "greater_than", "100"), cond("or", "s", "equal_to", "bad"));
+        // (t>50 and h>0) or s==ok
+        expect(TRUE, table, cond(null, "t", "greater_than", "50"), cond("and", "h", "greater_than", "0"), cond("or", "s", "equal_to", "ok"));
+        // relation缺省按or处理
+        expect(UNKNOWN, table, cond(null, "t", "greater_than", "15"), cond(null, "h", "greater_than", "100"));
+    }
+
+    @Test
+    public void nullsAndMissingColumns() {
+        Map<String, Column> t = columns("t", new Column(TSDataType.DOUBLE, 10.0, null, 30.0));
+        // 空值行上条件为false，因此不能是ALWAYS_TRUE
+        expect(UNKNOWN, t, cond(null, "t", "greater_than", "5"));
+        expect(FALSE, t, cond(null, "t", "greater_than", "50"));
+
+        Map<String, Column> allNull = columns("t", new Column(TSDataType.DOUBLE, null, null), "h", new Column(TSDataType.INT32, 1, 2));
+        expect(FALSE, allNull, cond(null, "t", "greater_than", "-1000"));
+        expect(TRUE, allNull, cond(null, "t", "greater_than", "-1000"), cond("or", "h", "greater_than", "0"));
+
+        Map<String, Column> missing = columns("t", new Column(TSDataType.DOUBLE, 10.0, 20.0));
+        expect(FALSE, missing, cond(null, "x", "equal_to", "1"));
+        expect(FALSE, missing, cond(null, "x", "not_equal_to", "1"));
+        expect(TRUE, missing, cond(null, "x", "equal_to", "1"), cond("or", "t", "greater_than", "5"));
+        expect(FALSE, missing, cond(null, "x", "equal_to", "1"), cond("and", "t", "greater_than", "5"));
+    }
+
+    @Test
+    public void nanFallsBackToRowEvaluation() {
+        Map<String, Column> f = columns("f", new Column(TSDataType.FLOAT, 1.0f, Float.NaN, 3.0f));
+        expect(UNKNOWN, f, cond(null, "f", "greater_than", "0"));
+        expect(UNKNOWN, f, cond(null, "f", "not_equal_to", "5"));
+        expect(UNKNOWN, f, cond(null, "f", "less_than", "-1"));
+
+        Map<String, Column> onlyNaN = columns("d", new Column(TSDataType.DOUBLE, Double.NaN, Double.NaN));
+        expect(UNKNOWN, onlyNaN, cond(null, "d", "not_equal_to", "1"));
+    }
+
+    @Test
+    public void floatAndInt64WideningMatchesRowComparison() {
+        // 0.1f提升为double后不等于0.1
+        Map<String, Column> f = columns("f", new Column(TSDataType.FLOAT, 0.1f, 0.1f));
+        expect(FALSE, f, cond(null, "f", "equal_to", "0.1"));
+        expect(TRUE, f, cond(null, "f", "greater_than", "0.1"));
+
+        // 超过2^53的long转double后相等
+        Map<String, Column> l = columns("l", new Column(TSDataType.INT64, 9007199254740993L, 9007199254740993L));
+        expect(TRUE, l, cond(null, "l", "equal_to", "9007199254740992"));
+        expect(FALSE, l, cond(null, "l", "greater_than", "9007199254740992"));
+    }
+
+    @Test
+    public void booleanColumns() {
+        Map<String, Column> allTrue = columns("b", new Column(TSDataType.BOOLEAN, true, true, true));
+        expect(TRUE, allTrue, cond(null, "b", "equal_to", "true"));
+        expect(FALSE, allTrue, cond(null, "b", "equal_to", "false"));
+        expect(TRUE, allTrue, cond(null, "b", "not_equal_to", "FALSE"));
+        expect(FALSE, allTrue, cond(null, "b", "greater_than", "0"));
+
+        Map<String, Column> allFalse = columns("b", new Column(TSDataType.BOOLEAN, false, false));
+        expect(TRUE, allFalse, cond(null, "b", "equal_to", "false"));
+
+        Map<String, Column> mixed = columns("b", new Column(TSDataType.BOOLEAN, true, false));
+        expect(UNKNOWN, mixed, cond(null, "b", "equal_to", "true"));
+    }
+
+    @Test
+    public void textColumns() {
+        Map<String, Column> same = columns("s", new Column(TSDataType.TEXT, "RUN", "RUN", "RUN"));
+        expect(TRUE, same, cond(null, "s", "equal_to", "RUN"));
+        expect(FALSE, same, cond(null, "s", "not_equal_to", "RUN"));
+        expect(TRUE, same, cond(null, "s", "contains", "UN"));
+        expect(TRUE, same, cond(null, "s", "in_set", "STOP, RUN"));
+        expect(FALSE, same, cond(null, "s", "starts_with", "ST"));
+        expect(FALSE, same, cond(null, "s", "greater_than", "1"));
+
+        Map<String, Column> diff = columns("s", new Column(TSDataType.TEXT, "RUN", "STOP", null));
+        expect(UNKNOWN, diff, cond(null, "s", "equal_to", "RUN"));
+        expect(FALSE, diff, cond(null, "s", "less_than", "1"));
+
+        Map<String, Column> sameWithNull = columns("s", new Column(TSDataType.TEXT, "RUN", null));
+        expect(UNKNOWN, sameWithNull, cond(null, "s", "equal_to", "RUN"));
+        expect(FALSE, sameWithNull, cond(null, "s", "equal_to", "STOP"));
+    }
+
+    @Test
+    public void numericInSet() {
+        Map<String, Column> codes = columns("code", new Column(TSDataType.INT32, 101, 105, 110));
+        expect(FALSE, codes, cond(null, "code", "in_set", "200, 201"));
+        expect(UNKNOWN, codes, cond(null, "code", "in_set", "102,103"));
+        expect(FALSE, codes, cond(null, "code", "in_set", "99, 111"));
+        expect(UNKNOWN, codes, cond(null, "code", "in_set", "105,300"));
+        expect(FALSE, codes, cond(null, "code", "contains", "10"));
+
+        Map<String, Column> same = columns("code", new Column(TSDataType.INT64, 7L, 7L));
+        expect(TRUE, same, cond(null, "code", "in_set", "5, 7, ERR"));
+        expect(FALSE, same, cond(null, "code", "in_set", "ERR"));
+
+        Map<String, Column> zero = columns("v", new Column(TSDataType.DOUBLE, -0.0, 0.0));
+        expect(TRUE, zero, cond(null, "v", "in_set", "0"));
+    }
+
+    /**
+     * 随机表格与随机规则，校验剪枝结论始终与逐行判断一致
+     */
+    @Test
+    public void randomTablesAgreeWithRowEvaluation() {
+        Random random = new Random(20261018L);
+        TSDataType[] types = {TSDataType.DOUBLE, TSDataType.FLOAT, TSDataType.INT32, TSDataType.INT64, TSDataType.BOOLEAN, TSDataType.TEXT};
+        String[] ops = {"greater_than", "less_than", "equal_to", "not_equal_to", "between", "not_between",
+                "contains", "starts_with", "in_set", "regex"};
+        String[] numbers = {"-1", "0", "1", "2", "2.5", "3", "", "x"};
+        String[] texts = {"A", "B", "AB", "A,B", "^A", "true", "false", "1,3", "0, 2.0, X"};
+        String[] words = {"A", "B", "AB", "BA"};
+        String[] names = {"c0", "c1", "c2"};
+
+        for (int iter = 0; iter < 20000; iter++) {
+            int rows = 1 + random.nextInt(5);
+            Map<String, Column> table = new LinkedHashMap<>();
+            for (String name : names) {
+                if (random.nextInt(5) == 0) continue;
+                TSDataType type = types[random.nextInt(types.length)];
+                Object[] values = new Object[rows];
+                for (int i = 0; i < rows; i++) {
+                    if (random.nextInt(4) == 0) continue;
+                    int n = random.nextInt(4);
+                    switch (type) {
+                        case DOUBLE: values[i] = random.nextInt(10) == 0 ? Double.NaN : (double) n; break;
+                        case FLOAT: values[i] = random.nextInt(10) == 0 ? Float.NaN : (float) n; break;
+                        case INT32: values[i] = n; break;
+                        case INT64: values[i] = (long) n; break;
+                        case BOOLEAN: values[i] = random.nextBoolean(); break;
+                        default: values[i] = words[random.nextInt(words.length)]; break;
+                    }
+                }
+                table.put(name, new Column(type, values));
+            }
+            if (table.isEmpty()) continue;
+
+            List<AlarmCondition> conds = new ArrayList<>();
+            int count = 1 + random.nextInt(3);
+            for (int c = 0; c < count; c++) {
+                String op = ops[random.nextInt(ops.length)];
+                String[] pool = random.nextBoolean() ? numbers : texts;
+                conds.add(cond(random.nextBoolean() ? "and" : "or", names[random.nextInt(names.length)], op,
+                        pool[random.nextInt(pool.length)], numbers[random.nextInt(numbers.length)]));
+            }
+            checkAgainstRows(table, conds);
+        }
+    }
+}
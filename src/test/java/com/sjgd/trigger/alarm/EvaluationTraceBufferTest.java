@@ -0,0 +1,168 @@
+package com.sjgd.trigger.alarm;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EvaluationTraceBufferTest {
+
+    private static AlarmCondition condition(String propId) {
+        AlarmCondition cond = new AlarmCondition();
+        cond.setPropertyIdentifier(propId);
+        cond.setConditionType("greater_than");
+        cond.setThresholdValue("0");
+        return cond;
+    }
+
+    @Test
+    public void captureIsOffByDefault() {
+        EvaluationTraceBuffer buffer = new EvaluationTraceBuffer(16);
+        assertFalse(buffer.isEnabled());
+        assertFalse(buffer.shouldCapture("1", "root.d1"));
+    }
+
+    @Test
+    public void samplingAndFilters() {
+        EvaluationTraceBuffer buffer = new EvaluationTraceBuffer(16);
+        buffer.setEnabled(true);
+        buffer.setSampleEvery(3);
+        int captured = 0;
+        for (int i = 0; i < 9; i++) {
+            if (buffer.shouldCapture("1", "root.d1")) captured++;
+        }
+        assertEquals(3, captured);
+
+        buffer.setSampleEvery(1);
+        buffer.setRuleFilter("2, 3");
+        assertFalse(buffer.shouldCapture("1", "root.d1"));
+        assertTrue(buffer.shouldCapture("2", "root.d1"));
+        buffer.setDeviceFilter("root.d2");
+        assertFalse(buffer.shouldCapture("2", "root.d1"));
+        assertTrue(buffer.shouldCapture("2", "root.d2"));
+    }
+
+    @Test
+    public void dumpReturnsMostRecentInOrder() {
+        EvaluationTraceBuffer buffer = new EvaluationTraceBuffer(4);
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put("t", 1.5);
+        List<AlarmCondition> conditions = Arrays.asList(condition("t"));
+        for (int i = 0; i < 10; i++) {
+            buffer.record("1", "root.d1", i, inputs, conditions, new boolean[] {true}, true);
+        }
+        String[] traces = buffer.dumpTraces();
+        assertEquals(4, traces.length);
+        assertTrue(traces[0].contains("timestamp=6 "));
+        assertTrue(traces[3].contains("timestamp=9 "));
+        assertTrue(traces[3].contains("inputs={t=1.5}"));
+        assertTrue(traces[3].contains("t greater_than 0 -> true"));
+
+        buffer.clear();
+        assertEquals(0, buffer.dumpTraces().length);
+    }
+
+    @Test
+    public void prunedTabletIsTraced() {
+        EvaluationTraceBuffer buffer = new EvaluationTraceBuffer(4);
+        Map<String, Object> inputs = new HashMap<>();
+        inputs.put("t", 1.5);
+        buffer.record("1", "root.d1", 5, inputs, Arrays.asList(condition("t")), new boolean[] {true}, true);
+        buffer.recordPruned("1", "root.d1", 100, 199, 100, Arrays.asList(condition("t")),
+                new CompiledRule.Verdict[] {CompiledRule.Verdict.ALWAYS_FALSE});
+        String[] traces = buffer.dumpTraces();
+        assertEquals(2, traces.length);
+        assertTrue(traces[1].contains("timestamp=[100,199] rows=100 pruned inputs={}"));
+        assertTrue(traces[1].contains("t greater_than 0 -> ALWAYS_FALSE"));
+        assertTrue(traces[1].endsWith("triggered=false"));
+    }
+
+    /**
+     * 并发写入与导出：每个写线程使用自己的规则/设备/测点名，导出的每一行都不能混入其它线程的数据
+     */
+    @Test
+    public void concurrentDumpNeverReturnsMixedTraces() throws Exception {
+        final EvaluationTraceBuffer buffer = new EvaluationTraceBuffer(64);
+        final int writers = 4;
+        final int perWriter = 200000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<String> mixed = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            final int id = w;
+            threads.add(new Thread(() -> {
+                Map<String, Object> inputs = new HashMap<>();
+                inputs.put("a" + id, id);
+                inputs.put("b" + id, id);
+                List<AlarmCondition> conditions = Arrays.asList(condition("a" + id), condition("b" + id));
+                boolean[] results = {id % 2 == 0, id % 2 == 0};
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perWriter; i++) {
+                    buffer.record("r" + id, "d" + id, i, inputs, conditions, results, id % 2 == 0);
+                }
+            }));
+        }
+        Thread dumper = new Thread(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (!done.get() && mixed.get() == null) {
+                for (String line : buffer.dumpTraces()) {
+                    if (!isConsistent(line, writers)) {
+                        mixed.compareAndSet(null, line);
+                    }
+                }
+            }
+        });
+        for (Thread t : threads) t.start();
+        dumper.start();
+        start.countDown();
+        for (Thread t : threads) t.join();
+        done.set(true);
+        dumper.join();
+
+        assertEquals("mixed trace: " + mixed.get(), null, mixed.get());
+        assertEquals((long) writers * perWriter, buffer.getRecordedCount() + buffer.getDroppedCount());
+    }
+
+    private static boolean isConsistent(String line, int writers) {
+        int owner = -1;
+        for (int w = 0; w < writers; w++) {
+            if (line.contains(" rule=r" + w + " ")) owner = w;
+        }
+        if (owner < 0) return false;
+        String expected = String.valueOf(owner % 2 == 0);
+        if (!line.contains(" device=d" + owner + " ")
+                || !line.contains("a" + owner + "=" + owner)
+                || !line.contains("b" + owner + "=" + owner)
+                || !line.contains("a" + owner + " greater_than 0 -> " + expected)
+                || !line.contains("b" + owner + " greater_than 0 -> " + expected)
+                || !line.endsWith("triggered=" + expected)) {
+            return false;
+        }
+        for (int w = 0; w < writers; w++) {
+            if (w != owner && (line.contains("a" + w) || line.contains("b" + w) || line.contains("d" + w))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
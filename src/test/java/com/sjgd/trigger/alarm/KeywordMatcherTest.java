@@ -0,0 +1,94 @@
+package com.sjgd.trigger.alarm;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeywordMatcherTest {
+
+    private static boolean matches(KeywordMatcher matcher, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return matcher.matches(bytes, bytes.length);
+    }
+
+    @Test
+    public void classicOverlappingKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.build(Arrays.asList("he", "she", "his", "hers"));
+        assertTrue(matches(matcher, "ushers"));
+        assertTrue(matches(matcher, "ahishers"));
+        assertFalse(matches(matcher, "hxsx"));
+        assertFalse(matches(matcher, ""));
+    }
+
+    @Test
+    public void multiByteKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.build(Arrays.asList("故障", "离线", "E0"));
+        assertTrue(matches(matcher, "设备故障"));
+        assertTrue(matches(matcher, "网关离线了"));
+        assertTrue(matches(matcher, "code=E01"));
+        assertFalse(matches(matcher, "故 障"));
+        assertFalse(matches(matcher, "正常"));
+    }
+
+    @Test
+    public void emptyKeywordsNeverMatch() {
+        assertFalse(matches(KeywordMatcher.build(Collections.<String>emptyList()), "anything"));
+        assertFalse(matches(KeywordMatcher.build(Arrays.asList("", null)), "anything"));
+    }
+
+    @Test
+    public void alphabetIsCompressedToKeywordBytes() {
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            codes.add(String.format("ERR_%04d", i * 7));
+        }
+        KeywordMatcher matcher = KeywordMatcher.build(codes);
+        // E R _ 以及数字0-9，加上未出现字节的公共类
+        assertEquals(14, matcher.alphabetSize());
+        long tableBytes = (long) matcher.stateCount() * matcher.alphabetSize() * 4;
+        assertTrue("transition table too large: " + tableBytes, tableBytes < 128 * 1024);
+        assertTrue(matches(matcher, "device reported ERR_0014 at boot"));
+        assertFalse(matches(matcher, "device reported ERR_0015 at boot"));
+    }
+
+    /**
+     * 与String.contains对比的随机测试，字符集包含ASCII、双字节、三字节和四字节(代理对)UTF-8字符
+     */
+    @Test
+    public void agreesWithStringContains() {
+        String[] alphabet = {"a", "b", "c", "é", "ß", "中", "文", "😀"};
+        Random random = new Random(42L);
+        for (int iter = 0; iter < 200000; iter++) {
+            List<String> keywords = new ArrayList<>();
+            int keywordCount = 1 + random.nextInt(4);
+            for (int k = 0; k < keywordCount; k++) {
+                keywords.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+            }
+            String text = randomString(random, alphabet, random.nextInt(12));
+
+            boolean expected = false;
+            for (String keyword : keywords) {
+                expected |= text.contains(keyword);
+            }
+            assertEquals("keywords=" + keywords + " text=" + text, expected,
+                    matches(KeywordMatcher.build(keywords), text));
+        }
+    }
+
+    private static String randomString(Random random, String[] alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -5,6 +5,7 @@
 """
 
 import json
+import re
 from typing import Dict, List, Any, Union
 
 class AlarmCondition:
@@ -72,10 +73,15 @@ def check_single_condition(condition: AlarmCondition, telemetry_dict: Dict[str,
         print(f"属性 {prop_id} 值为null")
         return False
     
-    condition_type = condition.condition_type
+    condition_type = condition.condition_type.upper()
     threshold = condition.threshold_value
     threshold2 = condition.threshold_value2
     
+    if condition_type in TEXT_CONDITION_TYPES:
+        result = check_text_condition(condition_type, value, threshold)
+        print(f"条件结果: {value!r} {condition_type} {threshold} = {result}")
+        return result
+    
     try:
         numeric_value = float(value)
         th = float(threshold) if threshold else 0
@@ -105,6 +111,45 @@ def check_single_condition(condition: AlarmCondition, telemetry_dict: Dict[str,
         print(f"解析数值失败: {value}, 错误: {e}")
         return False
 
+TEXT_CONDITION_TYPES = ("CONTAINS", "STARTS_WITH", "IN_SET", "REGEX")
+
+def split_keywords(value: str) -> List[str]:
+    """按逗号拆分关键字，模拟Java splitKeywords方法"""
+    if not value:
+        return []
+    return [item.strip() for item in value.split(",") if item.strip()]
+
+def check_text_condition(condition_type: str, value: Any, threshold: str) -> bool:
+    """文本条件判断，模拟Java CompiledCondition的contains/starts_with/in_set/regex"""
+    keywords = split_keywords(threshold)
+    if isinstance(value, bool):
+        # 布尔列上文本条件恒为false
+        return False
+    if isinstance(value, (int, float)):
+        # 数值列仅in_set按数值比较，其它文本条件恒为false
+        if condition_type != "IN_SET" or value != value:
+            return False
+        numeric_set = set()
+        for item in keywords:
+            try:
+                numeric_set.add(float(item))
+            except ValueError:
+                pass
+        return float(value) in numeric_set
+    
+    text = str(value)
+    if condition_type == "CONTAINS":
+        return any(keyword in text for keyword in keywords)
+    if condition_type == "STARTS_WITH":
+        return any(text.startswith(keyword) for keyword in keywords)
+    if condition_type == "IN_SET":
+        return text in keywords
+    try:
+        return threshold is not None and re.search(threshold, text) is not None
+    except re.error as e:
+        print(f"正则表达式无效: {threshold}, 错误: {e}")
+        return False
+
 def check_conditions(conditions: List[AlarmCondition], telemetry_dict: Dict[str, Any]) -> bool:
     """多条件组合判断，模拟Java checkConditions方法"""
     if not conditions:
@@ -204,5 +249,41 @@ def test_trigger_logic():
         else:
             print("条件不满足，不触发告警")
 
+def test_text_condition_logic():
+    """测试文本条件逻辑：contains/starts_with/in_set/regex"""
+    print("\n=== 文本条件逻辑测试 ===")
+    
+    test_cases = [
+        ("contains", "status", "故障, offline", "网关故障", True),
+        ("contains", "status", "故障, offline", "device offline", True),
+        ("contains", "status", "故障, offline", "正常", False),
+        ("starts_with", "code", "E0, W1", "E01", True),
+        ("starts_with", "code", "E0, W1", "XE01", False),
+        ("in_set", "mode", "auto, manual", "manual", True),
+        ("in_set", "mode", "auto, manual", "manual ", False),
+        ("in_set", "level", "101, 103", 103, True),
+        ("in_set", "level", "101, 103", 103.0, True),
+        ("in_set", "level", "101, 103", 102, False),
+        ("in_set", "level", "101, 103", float("nan"), False),
+        ("contains", "level", "1", 101, False),
+        ("in_set", "switch", "true", True, False),
+        ("regex", "message", r"temp=\d{3}", "alarm temp=105 C", True),
+        ("regex", "message", r"temp=\d{3}", "alarm temp=95 C", False),
+        ("regex", "message", "([", "anything", False),
+    ]
+    
+    failures = 0
+    for condition_type, prop_id, threshold, value, expected in test_cases:
+        condition = AlarmCondition(prop_id, condition_type, threshold)
+        result = check_conditions([condition], {prop_id: value})
+        if result != expected:
+            failures += 1
+            print(f"!!! 不符合预期: {condition_type} {threshold!r} {value!r} 期望 {expected}, 实际 {result}")
+    
+    print(f"文本条件测试完成: {len(test_cases)} 个用例, {failures} 个失败")
+    return failures == 0
+
 if __name__ == "__main__":
-    test_trigger_logic() 
\ No newline at end of file
+    test_trigger_logic()
+    if not test_text_condition_logic():
+        raise SystemExit(1) 
\ No newline at end of file